@@ -12,7 +12,7 @@ set curdir=%~dp0
 cd /d %curdir%/bin
 
 set A=1 2 3 4 5 6 7 8 9 10
-set B=1 2 3 4 5 6 7
+set B=1 2 3 4 5 6 7 11
 for %%b in (%B%) do (
   for %%a in (%A%) do (
     echo testcase %%b, tokenstream %%a
@@ -1,6 +1,5 @@
 
-import model.Language;
-import util.BNFProcessor;
+import util.GrammarOptimizer;
 import util.LL1Analyzer;
 
 import java.io.IOException;
@@ -8,20 +7,20 @@ import java.io.IOException;
 public class SimpleYacc {
 
     public static void main(String[] args) {
-        if (args.length != 2) {
-            System.err.println("usage: java " + SimpleYacc.class.getSimpleName() + " <BNF_GRAMMAR_FILE_NAME> <TEST_CASE_TOKENS_FILE_NAME>");
+        boolean printReport = args.length == 3 && args[0].equals("-report");
+        if (args.length != 2 && !printReport) {
+            System.err.println("usage: java " + SimpleYacc.class.getSimpleName() + " [-report] <BNF_GRAMMAR_FILE_NAME> <TEST_CASE_TOKENS_FILE_NAME>");
             return;
         }
-        String bnfGrammarFileName = args[0];
-        String testCaseTokensFileName = args[1];
+        String bnfGrammarFileName = args[args.length - 2];
+        String testCaseTokensFileName = args[args.length - 1];
         try {
-            Language language = BNFProcessor
-                    .Builder()
-                    .parseBNF(bnfGrammarFileName)
-                    .eliminateLeftRecursion()
-                    .result();
+            GrammarOptimizer optimizer = GrammarOptimizer.loadBNF(bnfGrammarFileName);
+            if (printReport) { // 输出到标准错误，标准输出仍只有分析结果
+                System.err.println("文法优化：" + optimizer.report());
+            }
             boolean analysisResult = LL1Analyzer
-                    .Builder(language)
+                    .Builder(optimizer.result())
                     .analyze(testCaseTokensFileName)
                     .result();
             System.out.println(analysisResult ? "YES" : "NO");
@@ -32,4 +31,3 @@ public class SimpleYacc {
         }
     }
 }
-
@@ -0,0 +1,26 @@
+package model;
+
+import java.util.Set;
+
+/**
+ * 文法分析失败的位置与原因
+ */
+public class Rejection {
+    public int position;                // 出错单词在单词流中的序号，在单词流结尾出错时等于单词个数
+    public Symbol token;                // 出错的单词，在单词流结尾出错时为"$"
+    public Set<Symbol> expectedSymbols; // 出错位置可以接受的输入符号
+    public boolean unknownToken;        // 出错的单词是否不属于文法的终结符集合
+
+    public Rejection(int position, Symbol token, Set<Symbol> expectedSymbols, boolean unknownToken) {
+        this.position = position;
+        this.token = token;
+        this.expectedSymbols = expectedSymbols;
+        this.unknownToken = unknownToken;
+    }
+
+    @Override
+    public String toString() {
+        return "at " + position + ": " + (unknownToken ? "unknown token " : "unexpected token ") + token
+                + ", expected one of " + expectedSymbols;
+    }
+}
@@ -228,8 +228,9 @@ public class BNFProcessor {
             // 消除立即左递归
             List<Expression> newExpressionsFirst = new ArrayList<>();
             List<Expression> newExpressionsSecond = new ArrayList<>();
-            // 生成一个新的随机Symbol，用于表示消除左递归后第二层产生式左边的符号
-            Symbol secondSymbol = Symbol.of(entry.getKey().content.concat("-").concat(UUID.randomUUID().toString()));
+            // 生成一个新的Symbol，用于表示消除左递归后第二层产生式左边的符号
+            // BNF文件中的非终结符都以">"结尾，因此加在">"之后的后缀不会与之冲突；名称固定，同一文法多次解析得到相同的符号
+            Symbol secondSymbol = Symbol.of(entry.getKey().content.concat("'"));
             for (Expression exprWithoutLeftRecursion : expressionsWithoutLeftRecursion) {
                 newExpressionsFirst.add(exprWithoutLeftRecursion.concat(secondSymbol));
             }
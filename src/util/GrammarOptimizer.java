@@ -0,0 +1,266 @@
+package util;
+
+import model.Expression;
+import model.Language;
+import model.Symbol;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * 文法优化器
+ * 在BNF解析器与LL1文法分析器之间精简文法：删除无用符号、规范化并去除重复产生式、内联单产生式的单元规则，
+ * 从而缩小first/follow集计算和预测分析表的规模。各步骤都不改变文法定义的语言
+ */
+public class GrammarOptimizer {
+
+    private Language language;
+    private Report report = new Report();
+
+    private GrammarOptimizer() { }
+
+    /**
+     * 对象创建器（必须用此方法创建对象）
+     * @param language 通过BNF解析器获得的语言，不会被修改
+     * @return 一个新的文法优化器
+     */
+    public static GrammarOptimizer Builder(Language language) {
+        GrammarOptimizer optimizer = new GrammarOptimizer();
+        Map<Symbol, List<Expression>> bnfMap = new LinkedHashMap<>();
+        for (Map.Entry<Symbol, List<Expression>> entry : language.bnfMap.entrySet()) {
+            bnfMap.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        optimizer.language = new Language(bnfMap, language.startSymbol);
+        optimizer.report.nonTerminalsBefore = countNonTerminals(bnfMap);
+        optimizer.report.expressionsBefore = countExpressions(bnfMap);
+        optimizer.report.symbolsBefore = countSymbols(bnfMap);
+        return optimizer;
+    }
+
+    /**
+     * 读入BNF文件并依次执行全部优化步骤：解析、消除左递归，再删除无用符号、去除重复产生式、内联单元规则
+     * @param bnfFileName BNF文件路径
+     * @return 已完成优化的文法优化器，通过result取得交给LL1文法分析器的语言，通过report取得文法规模的变化
+     * @throws IOException 找不到文件时抛出此异常
+     */
+    public static GrammarOptimizer loadBNF(String bnfFileName) throws IOException {
+        Language language = BNFProcessor
+                .Builder()
+                .parseBNF(bnfFileName)
+                .eliminateLeftRecursion()
+                .result();
+        return Builder(language)
+                .removeUselessSymbols()
+                .removeDuplicateExpressions()
+                .inlineUnitRules();
+    }
+
+    /**
+     * 删除无用符号：先删除不能推出终结符串的非终结符及引用它们的产生式，再删除从起始符号不可达的非终结符
+     * 起始符号总是保留；当它不能推出终结符串时，其产生式列表为空
+     * @return 文法优化器自身
+     */
+    public GrammarOptimizer removeUselessSymbols() {
+        Map<Symbol, List<Expression>> bnfMap = language.bnfMap;
+
+        // 找出能推出终结符串的非终结符
+        Set<Symbol> generatingSymbols = new HashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<Symbol, List<Expression>> entry : bnfMap.entrySet()) {
+                if (generatingSymbols.contains(entry.getKey())) {
+                    continue;
+                }
+                for (Expression expr : entry.getValue()) {
+                    if (isGenerating(expr, generatingSymbols)) {
+                        generatingSymbols.add(entry.getKey());
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        Map<Symbol, List<Expression>> generatingBnfMap = new LinkedHashMap<>();
+        for (Map.Entry<Symbol, List<Expression>> entry : bnfMap.entrySet()) {
+            if (generatingSymbols.contains(entry.getKey()) || entry.getKey().equals(language.startSymbol)) {
+                List<Expression> expressions = new ArrayList<>();
+                for (Expression expr : entry.getValue()) {
+                    if (isGenerating(expr, generatingSymbols)) {
+                        expressions.add(expr);
+                    }
+                }
+                generatingBnfMap.put(entry.getKey(), expressions);
+            }
+        }
+
+        // 找出从起始符号可达的非终结符
+        Set<Symbol> reachableSymbols = new HashSet<>();
+        Deque<Symbol> pendingSymbols = new ArrayDeque<>();
+        reachableSymbols.add(language.startSymbol);
+        pendingSymbols.push(language.startSymbol);
+        while (!pendingSymbols.isEmpty()) {
+            for (Expression expr : generatingBnfMap.get(pendingSymbols.pop())) {
+                for (Symbol symbol : expr.symbols) {
+                    if (generatingBnfMap.containsKey(symbol) && reachableSymbols.add(symbol)) {
+                        pendingSymbols.push(symbol);
+                    }
+                }
+            }
+        }
+        generatingBnfMap.keySet().retainAll(reachableSymbols);
+        language.bnfMap = generatingBnfMap;
+        return this;
+    }
+
+    /**
+     * 判断产生式右部是否只由终结符和能推出终结符串的非终结符组成
+     * @param expression 产生式右部
+     * @param generatingSymbols 已知能推出终结符串的非终结符
+     * @return 产生式能否推出终结符串
+     */
+    private boolean isGenerating(Expression expression, Set<Symbol> generatingSymbols) {
+        for (Symbol symbol : expression.symbols) {
+            if (language.bnfMap.containsKey(symbol) && !generatingSymbols.contains(symbol)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 规范化产生式并去除重复的产生式
+     * 长度大于1的产生式中的空串被删去，全部由空串组成或没有符号的产生式统一为单个空串，之后相同的产生式只保留第一个
+     * @return 文法优化器自身
+     */
+    public GrammarOptimizer removeDuplicateExpressions() {
+        for (Map.Entry<Symbol, List<Expression>> entry : language.bnfMap.entrySet()) {
+            Set<Expression> expressions = new LinkedHashSet<>();
+            for (Expression expr : entry.getValue()) {
+                List<Symbol> symbols = new ArrayList<>();
+                for (Symbol symbol : expr.symbols) {
+                    if (!symbol.equals(Symbol.EPSILON)) {
+                        symbols.add(symbol);
+                    }
+                }
+                if (symbols.isEmpty()) {
+                    symbols.add(Symbol.EPSILON);
+                }
+                expressions.add(Expression.of(symbols));
+            }
+            entry.setValue(new ArrayList<>(expressions));
+        }
+        return this;
+    }
+
+    /**
+     * 内联单元规则：只有一个产生式且右部是单个非终结符的规则 A ::= B，把文法中所有的A替换为B并删去A
+     * 替换前后预测分析表中B的各行不变、A的行被删去，因此仍是LL1文法
+     * @return 文法优化器自身
+     */
+    public GrammarOptimizer inlineUnitRules() {
+        Map<Symbol, Symbol> unitRuleMap = new HashMap<>();
+        for (Map.Entry<Symbol, List<Expression>> entry : language.bnfMap.entrySet()) {
+            List<Expression> expressions = entry.getValue();
+            if (expressions.size() == 1 && expressions.get(0).symbols.size() == 1) {
+                Symbol target = expressions.get(0).symbols.get(0);
+                if (language.bnfMap.containsKey(target) && !target.equals(entry.getKey())) {
+                    unitRuleMap.put(entry.getKey(), target);
+                }
+            }
+        }
+        // 沿单元规则链找到最终的替换目标；构成环的单元规则不能推出终结符串，保留原样
+        Map<Symbol, Symbol> replacementMap = new HashMap<>();
+        for (Symbol symbol : unitRuleMap.keySet()) {
+            Set<Symbol> visited = new HashSet<>();
+            Symbol target = symbol;
+            while (unitRuleMap.containsKey(target) && visited.add(target)) {
+                target = unitRuleMap.get(target);
+            }
+            if (!unitRuleMap.containsKey(target)) {
+                replacementMap.put(symbol, target);
+            }
+        }
+        if (replacementMap.isEmpty()) {
+            return this;
+        }
+        Map<Symbol, List<Expression>> bnfMap = new LinkedHashMap<>();
+        for (Map.Entry<Symbol, List<Expression>> entry : language.bnfMap.entrySet()) {
+            if (replacementMap.containsKey(entry.getKey())) {
+                continue;
+            }
+            List<Expression> expressions = new ArrayList<>();
+            for (Expression expr : entry.getValue()) {
+                List<Symbol> symbols = new ArrayList<>();
+                for (Symbol symbol : expr.symbols) {
+                    symbols.add(replacementMap.getOrDefault(symbol, symbol));
+                }
+                expressions.add(Expression.of(symbols));
+            }
+            bnfMap.put(entry.getKey(), expressions);
+        }
+        language.bnfMap = bnfMap;
+        language.startSymbol = replacementMap.getOrDefault(language.startSymbol, language.startSymbol);
+        return this;
+    }
+
+    /**
+     * 取得优化结果
+     * @return 优化后的语言
+     */
+    public Language result() {
+        return language;
+    }
+
+    /**
+     * 取得优化前后文法规模的对比
+     * @return 文法规模统计
+     */
+    public Report report() {
+        report.nonTerminalsAfter = countNonTerminals(language.bnfMap);
+        report.expressionsAfter = countExpressions(language.bnfMap);
+        report.symbolsAfter = countSymbols(language.bnfMap);
+        return report;
+    }
+
+    private static int countNonTerminals(Map<Symbol, List<Expression>> bnfMap) {
+        return bnfMap.size();
+    }
+
+    private static int countExpressions(Map<Symbol, List<Expression>> bnfMap) {
+        int count = 0;
+        for (List<Expression> expressions : bnfMap.values()) {
+            count += expressions.size();
+        }
+        return count;
+    }
+
+    private static int countSymbols(Map<Symbol, List<Expression>> bnfMap) {
+        int count = 0;
+        for (List<Expression> expressions : bnfMap.values()) {
+            for (Expression expr : expressions) {
+                count += expr.symbols.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 文法规模统计：非终结符个数、产生式个数、产生式右部符号总数
+     */
+    public static class Report {
+        public int nonTerminalsBefore;
+        public int nonTerminalsAfter;
+        public int expressionsBefore;
+        public int expressionsAfter;
+        public int symbolsBefore;
+        public int symbolsAfter;
+
+        @Override
+        public String toString() {
+            return "non-terminals: " + nonTerminalsBefore + " -> " + nonTerminalsAfter
+                    + ", expressions: " + expressionsBefore + " -> " + expressionsAfter
+                    + ", symbols: " + symbolsBefore + " -> " + symbolsAfter;
+        }
+    }
+}
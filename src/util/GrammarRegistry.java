@@ -0,0 +1,254 @@
+package util;
+
+import model.DerivationRule;
+import model.Expression;
+import model.Language;
+import model.Symbol;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 文法注册表
+ * 同时加载多个文法（例如同一文法的多个版本），所有文法共用一份符号字典，内容相同的预测分析表行只保存一份
+ * 文法可以从BNF文件原子地重新加载：已经取得旧文法分析器（或由它创建的会话）的分析继续使用旧版本完成，
+ * 之后取得的都是新版本。查询不加锁，加载、重新加载和卸载互斥执行
+ */
+public class GrammarRegistry {
+
+    private Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private SharedPool<Symbol> symbolDictionary = new SharedPool<>();
+    private SharedPool<Map<Symbol, DerivationRule>> rowPool = new SharedPool<>();
+
+    private GrammarRegistry() { }
+
+    /**
+     * 对象创建器（必须用此方法创建对象）
+     * @return 一个新的文法注册表
+     */
+    public static GrammarRegistry Builder() {
+        return new GrammarRegistry();
+    }
+
+    /**
+     * 从BNF文件加载一个文法；同名文法已存在时原子地替换为新版本
+     * 加载失败时抛出异常，已注册的旧版本保持不变
+     * @param grammarName 文法名称
+     * @param bnfFileName BNF文件路径
+     * @return 文法注册表自身
+     * @throws IOException 找不到文件时抛出此异常
+     * @throws LL1Analyzer.NotLL1GrammarException 当文法不是LL1文法时抛出此异常
+     */
+    public synchronized GrammarRegistry load(String grammarName, String bnfFileName)
+            throws IOException, LL1Analyzer.NotLL1GrammarException {
+        GrammarOptimizer optimizer = GrammarOptimizer.loadBNF(bnfFileName);
+        Language language = optimizer.result();
+        Set<Symbol> symbols = collectSymbols(language);
+        Map<Symbol, Symbol> internedSymbols = new HashMap<>();
+        for (Symbol symbol : symbols) {
+            internedSymbols.put(symbol, symbolDictionary.acquire(symbol));
+        }
+        LL1Analyzer analyzer;
+        try {
+            analyzer = LL1Analyzer.Builder(internSymbols(language, internedSymbols));
+        } catch (LL1Analyzer.NotLL1GrammarException e) {
+            internedSymbols.values().forEach(symbolDictionary::release);
+            throw e;
+        }
+        analyzer.shareRows(rowPool::acquire);
+
+        Entry entry = new Entry(bnfFileName, analyzer, internedSymbols.values(), optimizer.report());
+        Entry oldEntry = entries.put(grammarName, entry);
+        if (oldEntry != null) {
+            release(oldEntry);
+        }
+        return this;
+    }
+
+    /**
+     * 从原来的BNF文件重新加载一个文法
+     * @param grammarName 文法名称
+     * @return 文法注册表自身
+     * @throws IOException 找不到文件时抛出此异常
+     * @throws LL1Analyzer.NotLL1GrammarException 当文法不是LL1文法时抛出此异常
+     */
+    public synchronized GrammarRegistry reload(String grammarName)
+            throws IOException, LL1Analyzer.NotLL1GrammarException {
+        return load(grammarName, getEntry(grammarName).bnfFileName);
+    }
+
+    /**
+     * 卸载一个文法；正在使用它的分析不受影响
+     * @param grammarName 文法名称
+     * @return 文法注册表自身
+     */
+    public synchronized GrammarRegistry unload(String grammarName) {
+        Entry entry = entries.remove(grammarName);
+        if (entry != null) {
+            release(entry);
+        }
+        return this;
+    }
+
+    /**
+     * 取得文法当前版本的文法分析器
+     * 每次调用都返回一个共用该版本预测分析表的新文法分析器，analyze保存的分析结果和failFast模式只属于调用方，
+     * 不影响该文法的其他使用者
+     * @param grammarName 文法名称
+     * @return 文法分析器
+     */
+    public LL1Analyzer get(String grammarName) {
+        return getEntry(grammarName).analyzer.view();
+    }
+
+    /**
+     * 用文法当前版本创建一个增量语法分析会话，会话在整个分析过程中一直使用创建时的版本
+     * @param grammarName 文法名称
+     * @return 新的增量语法分析会话
+     */
+    public LL1ParseSession newSession(String grammarName) {
+        return getEntry(grammarName).analyzer.newSession();
+    }
+
+    /**
+     * 取得文法当前版本加载时优化前后的文法规模
+     * @param grammarName 文法名称
+     * @return 文法规模统计
+     */
+    public GrammarOptimizer.Report report(String grammarName) {
+        return getEntry(grammarName).report;
+    }
+
+    /**
+     * 取得已注册的文法名称
+     * @return 文法名称
+     */
+    public Set<String> grammarNames() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * 估算各文法占用的内存（字节）
+     * 文法独占的产生式、表项索引等全部计入；共享字典中的符号和共享的预测分析表行按引用它的文法个数平均分摊，
+     * 因此各文法的估算值之和约等于注册表的总占用。各部分的大小由LL1Analyzer按对象布局估算，不是精确值
+     * @return 文法名称到估算字节数的映射
+     */
+    public synchronized Map<String, Long> estimateMemory() {
+        Map<String, Long> memory = new TreeMap<>();
+        for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+            Entry entry = mapEntry.getValue();
+            LL1Analyzer analyzer = entry.analyzer;
+            double bytes = 0;
+            for (Symbol symbol : entry.symbols) {
+                bytes += (double) LL1Analyzer.estimateSymbolBytes(symbol) / symbolDictionary.count(symbol);
+            }
+            for (Map<Symbol, DerivationRule> row : analyzer.getPredictionAnalysisTableRows().values()) {
+                bytes += (double) LL1Analyzer.estimateRowBytes(row) / rowPool.count(row);
+            }
+            bytes += analyzer.estimateBytes();
+            memory.put(mapEntry.getKey(), Math.round(bytes));
+        }
+        return memory;
+    }
+
+    private Entry getEntry(String grammarName) {
+        Entry entry = entries.get(grammarName);
+        if (entry == null) {
+            throw new NoSuchElementException("Grammar not loaded: " + grammarName);
+        }
+        return entry;
+    }
+
+    /**
+     * 归还一个文法版本引用的共享符号和共享表行；引用计数归零的对象从字典中删除
+     * @param entry 文法版本
+     */
+    private void release(Entry entry) {
+        entry.symbols.forEach(symbolDictionary::release);
+        entry.analyzer.getPredictionAnalysisTableRows().values().forEach(rowPool::release);
+    }
+
+    /**
+     * 收集语言中出现的全部文法符号
+     * @param language 语言
+     * @return 文法符号集合
+     */
+    private static Set<Symbol> collectSymbols(Language language) {
+        Set<Symbol> symbols = new HashSet<>();
+        symbols.add(language.startSymbol);
+        for (Map.Entry<Symbol, List<Expression>> entry : language.bnfMap.entrySet()) {
+            symbols.add(entry.getKey());
+            for (Expression expr : entry.getValue()) {
+                symbols.addAll(expr.symbols);
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * 把语言中的文法符号全部替换为共享字典中的同名符号
+     * @param language 语言
+     * @param internedSymbols 符号到共享符号的映射
+     * @return 使用共享符号的新语言
+     */
+    private static Language internSymbols(Language language, Map<Symbol, Symbol> internedSymbols) {
+        Map<Symbol, List<Expression>> bnfMap = new LinkedHashMap<>();
+        for (Map.Entry<Symbol, List<Expression>> entry : language.bnfMap.entrySet()) {
+            List<Expression> expressions = new ArrayList<>();
+            for (Expression expr : entry.getValue()) {
+                List<Symbol> symbols = new ArrayList<>(expr.symbols.size());
+                for (Symbol symbol : expr.symbols) {
+                    symbols.add(internedSymbols.get(symbol));
+                }
+                expressions.add(Expression.of(symbols));
+            }
+            bnfMap.put(internedSymbols.get(entry.getKey()), expressions);
+        }
+        return new Language(bnfMap, internedSymbols.get(language.startSymbol));
+    }
+
+    /**
+     * 已注册的一个文法版本
+     */
+    private static class Entry {
+        String bnfFileName;
+        LL1Analyzer analyzer;
+        Collection<Symbol> symbols; // 该版本从共享字典中取得的符号
+        GrammarOptimizer.Report report;
+
+        Entry(String bnfFileName, LL1Analyzer analyzer, Collection<Symbol> symbols,
+              GrammarOptimizer.Report report) {
+            this.bnfFileName = bnfFileName;
+            this.analyzer = analyzer;
+            this.symbols = symbols;
+            this.report = report;
+        }
+    }
+
+    /**
+     * 带引用计数的共享对象池：相等的对象只保留第一个实例
+     * @param <T> 对象类型
+     */
+    private static class SharedPool<T> {
+        private Map<T, T> instances = new HashMap<>();
+        private Map<T, Integer> counts = new HashMap<>();
+
+        T acquire(T value) {
+            T instance = instances.computeIfAbsent(value, key -> key);
+            counts.merge(instance, 1, Integer::sum);
+            return instance;
+        }
+
+        void release(T value) {
+            if (counts.merge(value, -1, Integer::sum) <= 0) {
+                counts.remove(value);
+                instances.remove(value);
+            }
+        }
+
+        int count(T value) {
+            return counts.getOrDefault(value, 1);
+        }
+    }
+}
@@ -2,10 +2,12 @@ package util;
 
 import model.*;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -21,10 +23,25 @@ public class LL1Analyzer {
     private Map<Expression, Set<Symbol>> expressionFirstSetCache = new HashMap<>();
     private Map<Symbol, Set<Symbol>> followSetMap;
 
-    private Map<PredictionAnalysisTableCellIndexer, DerivationRule> predictionAnalysisTable;
+    private Map<Symbol, Map<Symbol, DerivationRule>> predictionAnalysisTable; // 非终结符 -> 输入符号 -> 产生式
+    private Map<Symbol, Integer> lookaheadNumberMap;   // 输入符号（终结符与"$"）的编号
+    private Symbol[] lookaheadSymbols;
 
+    // 编号后的预测分析表，供分析会话使用：输入符号的编号即符号编号，第i个非终结符的符号编号为 lookaheadSymbols.length + i
+    private int startSymbolNumber;
+    private int[][] ruleNumberTable;      // [非终结符序号][输入符号编号] -> 产生式编号，无表项时为NO_RULE
+    private int[][] ruleBodies;           // [产生式编号] -> 右部的符号编号（已去掉空串）
+    private BitSet[] expectedSymbolSets;  // [非终结符序号] -> 有表项的输入符号，分析失败时用于列出可接受的输入符号
+
+    // 语料单词字典到输入符号编号的映射，每个语料（及其子语料）只计算一次；以字典数组为键，语料不再使用时自动释放
+    private Map<Symbol[], int[]> corpusLookaheadNumberCache = Collections.synchronizedMap(new WeakHashMap<>());
+
+    static final int NO_RULE = -1;
+
+    private boolean failFast = false;
     private boolean isAnalyzed = false;
     private boolean analyzeResult;
+    private Rejection rejection;
 
     /**
      * 对象创建器（必须用此方法创建对象）
@@ -43,7 +60,7 @@ public class LL1Analyzer {
      * 取得终结符集合
      * @return 终结符集合
      */
-    private Set<Symbol> getTerminalSymbols() {
+    Set<Symbol> getTerminalSymbols() {
         if (terminalSymbols != null) {
             return terminalSymbols;
         }
@@ -220,30 +237,120 @@ public class LL1Analyzer {
         predictionAnalysisTable = new HashMap<>();
         for (Map.Entry<Symbol, List<Expression>> entry : language.bnfMap.entrySet()) {
             Symbol key = entry.getKey();
+            Map<Symbol, DerivationRule> row = new HashMap<>();
             for (Expression expr : entry.getValue()) {
                 for (Symbol firstSetSymbol : getFirstSet(expr)) {
                     if (firstSetSymbol.equals(Symbol.EPSILON)) {
                         for (Symbol followSetSymbol : getFollowSet(key)) {
-                            PredictionAnalysisTableCellIndexer indexer = new PredictionAnalysisTableCellIndexer(
-                                    key, followSetSymbol
-                            );
-                            if (predictionAnalysisTable.containsKey(indexer)) {
+                            if (row.containsKey(followSetSymbol)) {
                                 throw new NotLL1GrammarException();
                             }
-                            predictionAnalysisTable.put(indexer, new DerivationRule(key, expr));
+                            row.put(followSetSymbol, new DerivationRule(key, expr));
                         }
                     } else if (getTerminalSymbols().contains(firstSetSymbol)) {
-                        PredictionAnalysisTableCellIndexer indexer = new PredictionAnalysisTableCellIndexer(
-                                key, firstSetSymbol
-                        );
-                        if (predictionAnalysisTable.containsKey(indexer)) {
+                        if (row.containsKey(firstSetSymbol)) {
                             throw new NotLL1GrammarException();
                         }
-                        predictionAnalysisTable.put(indexer, new DerivationRule(key, expr));
+                        row.put(firstSetSymbol, new DerivationRule(key, expr));
                     }
                 }
             }
+            if (!row.isEmpty()) {
+                predictionAnalysisTable.put(key, row);
+            }
+        }
+        numberPredictionAnalysisTable();
+        // first集与follow集只在生成预测分析表时使用，释放以减少常驻内存
+        symbolFirstSetCache = new HashMap<>();
+        expressionFirstSetCache = new HashMap<>();
+        followSetMap = null;
+    }
+
+    /**
+     * 为输入符号、非终结符和产生式编号，生成编号后的预测分析表和各非终结符可接受输入符号的位集
+     * 分析会话只用这些数组推进分析栈，不再按文法符号查找哈希表
+     */
+    private void numberPredictionAnalysisTable() {
+        lookaheadNumberMap = new HashMap<>();
+        for (Symbol symbol : getTerminalSymbols()) {
+            if (!symbol.equals(Symbol.EPSILON)) {
+                lookaheadNumberMap.put(symbol, lookaheadNumberMap.size());
+            }
+        }
+        lookaheadNumberMap.putIfAbsent(Symbol.of("$"), lookaheadNumberMap.size());
+        lookaheadSymbols = new Symbol[lookaheadNumberMap.size()];
+        for (Map.Entry<Symbol, Integer> entry : lookaheadNumberMap.entrySet()) {
+            lookaheadSymbols[entry.getValue()] = entry.getKey();
+        }
+
+        Map<Symbol, Integer> symbolNumberMap = new HashMap<>(lookaheadNumberMap);
+        for (Symbol key : language.bnfMap.keySet()) {
+            symbolNumberMap.put(key, symbolNumberMap.size());
+        }
+        startSymbolNumber = symbolNumberMap.get(language.startSymbol);
+
+        Map<DerivationRule, Integer> ruleNumberMap = new HashMap<>();
+        List<int[]> bodies = new ArrayList<>();
+        int numberOfNonTerminals = language.bnfMap.size();
+        ruleNumberTable = new int[numberOfNonTerminals][];
+        expectedSymbolSets = new BitSet[numberOfNonTerminals];
+        for (Symbol key : language.bnfMap.keySet()) {
+            int nonTerminal = symbolNumberMap.get(key) - lookaheadSymbols.length;
+            int[] row = new int[lookaheadSymbols.length];
+            Arrays.fill(row, NO_RULE);
+            BitSet expectedSymbolSet = new BitSet(lookaheadSymbols.length);
+            for (Map.Entry<Symbol, DerivationRule> entry
+                    : predictionAnalysisTable.getOrDefault(key, Collections.emptyMap()).entrySet()) {
+                DerivationRule rule = entry.getValue();
+                Integer ruleNumber = ruleNumberMap.get(rule);
+                if (ruleNumber == null) {
+                    ruleNumber = bodies.size();
+                    ruleNumberMap.put(rule, ruleNumber);
+                    bodies.add(rule.right.symbols.stream()
+                            .filter(symbol -> !symbol.equals(Symbol.EPSILON))
+                            .mapToInt(symbolNumberMap::get)
+                            .toArray());
+                }
+                int lookaheadNumber = lookaheadNumberMap.get(entry.getKey());
+                row[lookaheadNumber] = ruleNumber;
+                expectedSymbolSet.set(lookaheadNumber);
+            }
+            ruleNumberTable[nonTerminal] = row;
+            expectedSymbolSets[nonTerminal] = expectedSymbolSet;
         }
+        ruleBodies = bodies.toArray(new int[0][]);
+    }
+
+    /**
+     * 取得快速失败模式的文法分析器：analyze(String)不再输出推导过程，每次展开前先用位集检查输入符号，
+     * 读入不属于文法终结符集合的单词时立即失败并停止读取单词流文件，失败的位置和可接受的输入符号可通过rejection取得
+     * 返回的文法分析器与原分析器共用预测分析表，原分析器的模式不变，因此共享的文法分析器也可以安全调用
+     * @return 快速失败模式的文法分析器
+     */
+    public LL1Analyzer failFast() {
+        LL1Analyzer analyzer = view();
+        analyzer.failFast = true;
+        return analyzer;
+    }
+
+    /**
+     * 创建一个与本文法分析器共用语言和预测分析表的文法分析器，模式和分析结果各自独立
+     * @return 新的文法分析器
+     */
+    LL1Analyzer view() {
+        LL1Analyzer analyzer = new LL1Analyzer();
+        analyzer.language = language;
+        analyzer.terminalSymbols = terminalSymbols;
+        analyzer.predictionAnalysisTable = predictionAnalysisTable;
+        analyzer.lookaheadNumberMap = lookaheadNumberMap;
+        analyzer.lookaheadSymbols = lookaheadSymbols;
+        analyzer.startSymbolNumber = startSymbolNumber;
+        analyzer.ruleNumberTable = ruleNumberTable;
+        analyzer.ruleBodies = ruleBodies;
+        analyzer.expectedSymbolSets = expectedSymbolSets;
+        analyzer.corpusLookaheadNumberCache = corpusLookaheadNumberCache;
+        analyzer.failFast = failFast;
+        return analyzer;
     }
 
     /**
@@ -254,6 +361,25 @@ public class LL1Analyzer {
      */
     public LL1Analyzer analyze(String tokenFileName) throws IOException {
         isAnalyzed = true;
+        rejection = null;
+        if (failFast) {
+            LL1ParseSession session = newSession();
+            // 逐行读入，分析失败后不再读取文件的剩余部分
+            try (BufferedReader reader = Files.newBufferedReader(Paths.get(tokenFileName))) {
+                String token = reader.readLine();
+                String nextToken = reader.readLine();
+                if (!(token != null && token.equals("") && nextToken == null)) { // 只有一个空行的文件视为空文件
+                    while (token != null && !session.isRejected()) {
+                        session.feed(token);
+                        token = nextToken;
+                        nextToken = token == null ? null : reader.readLine();
+                    }
+                }
+            }
+            analyzeResult = session.end();
+            rejection = session.rejection();
+            return this;
+        }
         List<String> tokens = Files.readAllLines(Paths.get(tokenFileName));
         if (tokens.isEmpty() || (tokens.size() == 1 && tokens.get(0).equals(""))) { // 空文件
             analyzeResult = false;
@@ -269,9 +395,7 @@ public class LL1Analyzer {
         while (symbolStack.size() > 1) {
             Symbol topSymbol = symbolStack.peek();
             Symbol inputSymbol = Symbol.of(tokens.get(tokenIndex));
-            PredictionAnalysisTableCellIndexer indexer = new PredictionAnalysisTableCellIndexer(
-                    topSymbol, inputSymbol
-            );
+            DerivationRule rule = getPredictedRule(topSymbol, inputSymbol);
             if (topSymbol.equals(inputSymbol)) {
                 // 匹配到终结符
                 symbolStack.pop();
@@ -280,13 +404,12 @@ public class LL1Analyzer {
                 // 匹配失败 -- 输入符与栈顶不一致
                 analyzeResult = false;
                 return this;
-            } else if (!predictionAnalysisTable.containsKey(indexer)) {
+            } else if (rule == null) {
                 // 匹配失败 -- 找不到表项
                 analyzeResult = false;
                 return this;
             } else {
                 // 在栈顶用产生式右部替换左部
-                DerivationRule rule = predictionAnalysisTable.get(indexer);
                 System.out.println(rule);
                 symbolStack.pop();
                 for (int size = rule.right.symbols.size(), i = size - 1; i >= 0; i--) {
@@ -301,6 +424,219 @@ public class LL1Analyzer {
         return this;
     }
 
+    /**
+     * 创建一个增量语法分析会话，由调用方分批推入单词
+     * 同一个文法分析器可同时创建任意多个会话，会话之间互不影响
+     * @return 新的增量语法分析会话
+     */
+    public LL1ParseSession newSession() {
+        return new LL1ParseSession(this);
+    }
+
+    /**
+     * 取得文法的起始符号
+     * @return 起始符号
+     */
+    Symbol getStartSymbol() {
+        return language.startSymbol;
+    }
+
+    /**
+     * 判断文法符号是否为终结符
+     * @param symbol 要判断的文法符号
+     * @return 是否为终结符
+     */
+    boolean isTerminalSymbol(Symbol symbol) {
+        return getTerminalSymbols().contains(symbol);
+    }
+
+    /**
+     * 取得输入符号的编号
+     * @param inputSymbol 输入符号
+     * @return 输入符号的编号，不属于文法终结符集合且不是"$"时返回-1
+     */
+    int getLookaheadNumber(Symbol inputSymbol) {
+        return lookaheadNumberMap.getOrDefault(inputSymbol, -1);
+    }
+
+    /**
+     * 取得语料中各单词编号对应的输入符号编号，使语料分析不必逐个单词查找哈希表
+     * @param corpus 单词流语料
+     * @return 单词编号到输入符号编号的映射，不属于文法终结符集合的单词为-1
+     */
+    int[] getLookaheadNumbers(TokenCorpus corpus) {
+        return corpusLookaheadNumberCache.computeIfAbsent(corpus.getDictionary(), dictionary -> {
+            int[] lookaheadNumbers = new int[dictionary.length];
+            for (int id = 0; id < dictionary.length; id++) {
+                lookaheadNumbers[id] = getLookaheadNumber(dictionary[id]);
+            }
+            return lookaheadNumbers;
+        });
+    }
+
+    /**
+     * 取得起始符号的符号编号
+     * @return 起始符号的编号
+     */
+    int getStartSymbolNumber() {
+        return startSymbolNumber;
+    }
+
+    /**
+     * 查询编号后的预测分析表
+     * @param topSymbolNumber 栈顶符号的编号
+     * @param lookaheadNumber 当前输入符号的编号
+     * @return 对应表项中的产生式编号，栈顶为终结符或找不到表项时返回NO_RULE
+     */
+    int getPredictedRuleNumber(int topSymbolNumber, int lookaheadNumber) {
+        int nonTerminal = topSymbolNumber - lookaheadSymbols.length;
+        return nonTerminal < 0 ? NO_RULE : ruleNumberTable[nonTerminal][lookaheadNumber];
+    }
+
+    /**
+     * 取得产生式右部的符号编号
+     * @param ruleNumber 产生式编号
+     * @return 右部的符号编号（已去掉空串）
+     */
+    int[] getRuleBody(int ruleNumber) {
+        return ruleBodies[ruleNumber];
+    }
+
+    /**
+     * 取得栈顶为给定符号时可以接受的输入符号
+     * @param topSymbolNumber 栈顶符号的编号
+     * @return 可以接受的输入符号
+     */
+    Set<Symbol> getExpectedSymbols(int topSymbolNumber) {
+        Set<Symbol> expectedSymbols = new LinkedHashSet<>();
+        int nonTerminal = topSymbolNumber - lookaheadSymbols.length;
+        if (nonTerminal < 0) {
+            expectedSymbols.add(lookaheadSymbols[topSymbolNumber]);
+        } else {
+            BitSet expectedSymbolSet = expectedSymbolSets[nonTerminal];
+            for (int i = expectedSymbolSet.nextSetBit(0); i >= 0; i = expectedSymbolSet.nextSetBit(i + 1)) {
+                expectedSymbols.add(lookaheadSymbols[i]);
+            }
+        }
+        return expectedSymbols;
+    }
+
+    /**
+     * 查询预测分析表
+     * @param nonTerminalSymbol 栈顶的非终结符
+     * @param inputSymbol 当前输入符号
+     * @return 对应表项中的产生式，找不到表项时返回null
+     */
+    DerivationRule getPredictedRule(Symbol nonTerminalSymbol, Symbol inputSymbol) {
+        Map<Symbol, DerivationRule> row = predictionAnalysisTable.get(nonTerminalSymbol);
+        return row == null ? null : row.get(inputSymbol);
+    }
+
+    /**
+     * 分析语料中的一个单词流是否符合给定的文法
+     * 与analyze(String)的结果一致，但单词直接从语料的映射内存中读取，且不输出推导过程
+     * 分析结果保存在返回的会话中而不是文法分析器中，因此多个线程可以共享同一个文法分析器并发分析语料的不同部分
+     * @param corpus 单词流语料
+     * @param streamIndex 单词流序号
+     * @return 已结束的分析会话，通过其end方法取得分析结果，rejection方法取得失败的位置与原因
+     */
+    public LL1ParseSession analyze(TokenCorpus corpus, int streamIndex) {
+        LL1ParseSession session = newSession().feed(corpus, streamIndex);
+        session.end();
+        return session;
+    }
+
+    /**
+     * 取得预测分析表中出现的全部产生式（同一产生式可能出现在多个表项中）
+     * @return 预测分析表中的产生式
+     */
+    Collection<DerivationRule> getPredictedRules() {
+        List<DerivationRule> rules = new ArrayList<>();
+        for (Map<Symbol, DerivationRule> row : predictionAnalysisTable.values()) {
+            rules.addAll(row.values());
+        }
+        return rules;
+    }
+
+    /**
+     * 取得预测分析表的各行
+     * @return 非终结符到该行表项的映射
+     */
+    Map<Symbol, Map<Symbol, DerivationRule>> getPredictionAnalysisTableRows() {
+        return predictionAnalysisTable;
+    }
+
+    /**
+     * 用内容相同的共享行替换预测分析表中的各行，使多个文法分析器共用相同的表行
+     * 替换后各行不再修改
+     * @param rowPool 返回与给定行内容相同的共享行
+     */
+    void shareRows(UnaryOperator<Map<Symbol, DerivationRule>> rowPool) {
+        for (Map.Entry<Symbol, Map<Symbol, DerivationRule>> entry : predictionAnalysisTable.entrySet()) {
+            entry.setValue(rowPool.apply(entry.getValue()));
+        }
+    }
+
+    /**
+     * 估算文法分析器独占的内存（字节）：语言、预测分析表的外层索引、终结符集合、输入符号编号、编号后的预测分析表与位集
+     * 文法符号和预测分析表各行可能与其他文法分析器共享，不计入，分别用estimateSymbolBytes和estimateRowBytes估算
+     * 估算按64位JVM压缩指针下的对象布局计算，不是精确值
+     * @return 估算的字节数
+     */
+    long estimateBytes() {
+        long bytes = 16 + hashMapBytes(language.bnfMap.size());
+        for (List<Expression> expressions : language.bnfMap.values()) {
+            bytes += 24 + align(16 + 4L * expressions.size());
+            for (Expression expr : expressions) {
+                bytes += 16 + 24 + align(16 + 4L * expr.symbols.size());
+            }
+        }
+        bytes += hashMapBytes(predictionAnalysisTable.size());
+        bytes += 16 + hashMapBytes(terminalSymbols.size());
+        bytes += hashMapBytes(lookaheadNumberMap.size()) + 16L * lookaheadNumberMap.size();
+        bytes += align(16 + 4L * lookaheadSymbols.length);
+        bytes += align(16 + 4L * ruleNumberTable.length);
+        for (int[] row : ruleNumberTable) {
+            bytes += align(16 + 4L * row.length);
+        }
+        bytes += align(16 + 4L * ruleBodies.length);
+        for (int[] body : ruleBodies) {
+            bytes += align(16 + 4L * body.length);
+        }
+        bytes += align(16 + 4L * expectedSymbolSets.length);
+        for (BitSet expectedSymbolSet : expectedSymbolSets) {
+            bytes += 24 + align(16 + expectedSymbolSet.size() / 8);
+        }
+        return bytes;
+    }
+
+    /**
+     * 估算一个文法符号占用的内存（字节）
+     * @param symbol 文法符号
+     * @return 估算的字节数
+     */
+    static long estimateSymbolBytes(Symbol symbol) {
+        return 16 + 24 + align(16 + symbol.content.length());
+    }
+
+    /**
+     * 估算预测分析表一行占用的内存（字节），同一行中重复出现的产生式只计一次
+     * @param row 预测分析表的一行
+     * @return 估算的字节数
+     */
+    static long estimateRowBytes(Map<Symbol, DerivationRule> row) {
+        return hashMapBytes(row.size()) + 24L * new HashSet<>(row.values()).size();
+    }
+
+    private static long hashMapBytes(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, size * 4 / 3)) * 2;
+        return 48 + align(16 + 4L * capacity) + 32L * size;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) / 8 * 8;
+    }
+
     /**
      * 取得文法分析结果
      * @return 单词流是否符合给定的文法
@@ -312,6 +648,17 @@ public class LL1Analyzer {
         return analyzeResult;
     }
 
+    /**
+     * 取得文法分析失败的位置与原因（仅快速失败模式下记录）
+     * @return 失败的位置与原因，分析成功时返回null
+     */
+    public Rejection rejection() {
+        if (!isAnalyzed) {
+            throw new IllegalStateException("Not yet analyzed!");
+        }
+        return rejection;
+    }
+
     /**
      * 异常类，表示给定的文法不是LL1文法
      */
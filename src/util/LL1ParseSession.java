@@ -0,0 +1,186 @@
+package util;
+
+import model.Rejection;
+import model.Symbol;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LL1增量语法分析会话
+ * 单词由调用方分批推入，分析栈在两次推入之间保留，因此可以由网络缓冲区或事件循环驱动，无需为每次分析占用一个线程
+ * 一个会话只能由一个线程使用；多个会话可共享同一个文法分析器
+ */
+public class LL1ParseSession {
+
+    private LL1Analyzer analyzer;
+    private int[] symbolStack = new int[64]; // 符号编号，栈底的"$"不入栈
+    private int size = 0;
+
+    private int tokenCount = 0;
+    private boolean rejected = false;
+    private Rejection rejection;
+    private boolean isEnded = false;
+    private boolean analyzeResult;
+
+    LL1ParseSession(LL1Analyzer analyzer) {
+        this.analyzer = analyzer;
+        symbolStack[size++] = analyzer.getStartSymbolNumber();
+    }
+
+    /**
+     * 推入若干个单词
+     * @param tokens 新到达的单词
+     * @return 会话自身
+     * @throws IllegalStateException 会话已经结束时抛出此异常
+     */
+    public LL1ParseSession feed(String... tokens) {
+        return feed(Arrays.asList(tokens));
+    }
+
+    /**
+     * 推入若干个单词
+     * @param tokens 新到达的单词
+     * @return 会话自身
+     * @throws IllegalStateException 会话已经结束时抛出此异常
+     */
+    public LL1ParseSession feed(List<String> tokens) {
+        checkNotEnded();
+        for (String token : tokens) {
+            if (rejected) {
+                break; // 已经分析失败，不再查找和推入后续单词
+            }
+            feed(Symbol.of(token));
+        }
+        return this;
+    }
+
+    /**
+     * 推入语料中一个单词流的全部单词，单词编号直接从语料的映射内存中读取并换算为输入符号编号，
+     * 只在分析失败时才取出出错单词的文法符号
+     * @param corpus 单词流语料
+     * @param streamIndex 单词流序号
+     * @return 会话自身
+     * @throws IllegalStateException 会话已经结束时抛出此异常
+     */
+    public LL1ParseSession feed(TokenCorpus corpus, int streamIndex) {
+        checkNotEnded();
+        int[] lookaheadNumbers = analyzer.getLookaheadNumbers(corpus);
+        for (int position = corpus.offset(streamIndex), end = position + corpus.length(streamIndex);
+             position < end && !rejected; position++) {
+            int lookaheadNumber = lookaheadNumbers[corpus.tokenIdAt(position)];
+            if (!step(lookaheadNumber)) {
+                reject(tokenCount, corpus.symbolAt(position), lookaheadNumber < 0);
+            }
+            tokenCount++;
+        }
+        return this;
+    }
+
+    /**
+     * 推入一个单词，并尽可能推进分析栈直到该单词被匹配
+     * @param inputSymbol 输入符号
+     */
+    void feed(Symbol inputSymbol) {
+        checkNotEnded();
+        int lookaheadNumber = analyzer.getLookaheadNumber(inputSymbol);
+        if (!step(lookaheadNumber)) {
+            reject(tokenCount, inputSymbol, lookaheadNumber < 0);
+        }
+        tokenCount++;
+    }
+
+    private void checkNotEnded() {
+        if (isEnded) {
+            throw new IllegalStateException("Session already ended!");
+        }
+    }
+
+    /**
+     * 用一个输入符号驱动分析栈，直到该符号被匹配、分析失败或栈中只剩"$"
+     * 栈中是符号编号，每次展开只查一次编号后的预测分析表，不做字符串比较
+     * @param lookaheadNumber 输入符号的编号，不属于文法终结符集合时为负数
+     * @return 输入符号是否被接受；已经失败或栈中只剩"$"时总是返回true
+     */
+    private boolean step(int lookaheadNumber) {
+        if (rejected || size == 0) {
+            return true;
+        }
+        if (lookaheadNumber < 0) {
+            return false; // 匹配失败 -- 单词不属于文法的终结符集合
+        }
+        while (size > 0) {
+            int topSymbolNumber = symbolStack[size - 1];
+            if (topSymbolNumber == lookaheadNumber) {
+                // 匹配到终结符
+                size--;
+                return true;
+            }
+            int ruleNumber = analyzer.getPredictedRuleNumber(topSymbolNumber, lookaheadNumber);
+            if (ruleNumber == LL1Analyzer.NO_RULE) {
+                return false; // 匹配失败 -- 输入符与栈顶不一致，或找不到表项
+            }
+            // 在栈顶用产生式右部替换左部
+            int[] body = analyzer.getRuleBody(ruleNumber);
+            size--;
+            if (size + body.length > symbolStack.length) {
+                symbolStack = Arrays.copyOf(symbolStack, Math.max(symbolStack.length * 2, size + body.length));
+            }
+            for (int i = body.length - 1; i >= 0; i--) {
+                symbolStack[size++] = body[i];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 记录分析失败，之后会话不再推进分析栈
+     * @param position 出错单词在单词流中的序号
+     * @param inputSymbol 出错的单词
+     * @param unknownToken 出错的单词是否不属于文法的终结符集合
+     */
+    private void reject(int position, Symbol inputSymbol, boolean unknownToken) {
+        rejected = true;
+        rejection = new Rejection(position, inputSymbol,
+                analyzer.getExpectedSymbols(symbolStack[size - 1]), unknownToken);
+    }
+
+    /**
+     * 判断已推入的单词是否已经不可能符合文法
+     * 出错后会话不再推进分析栈，调用方可据此提前放弃后续输入
+     * @return 是否已经分析失败
+     */
+    public boolean isRejected() {
+        return rejected;
+    }
+
+    /**
+     * 取得分析失败的位置与原因
+     * @return 失败的位置与原因，尚未失败时返回null
+     */
+    public Rejection rejection() {
+        return rejection;
+    }
+
+    /**
+     * 结束输入并取得文法分析结果，与LL1Analyzer.analyze对同一单词流的结果一致
+     * @return 单词流是否符合给定的文法
+     */
+    public boolean end() {
+        if (isEnded) {
+            return analyzeResult;
+        }
+        isEnded = true;
+        if (tokenCount == 0) { // 空输入
+            reject(0, Symbol.of("$"), false);
+            analyzeResult = false;
+            return analyzeResult;
+        }
+        Symbol endSymbol = Symbol.of("$");
+        if (!step(analyzer.getLookaheadNumber(endSymbol))) {
+            reject(tokenCount, endSymbol, false);
+        }
+        analyzeResult = !rejected;
+        return analyzeResult;
+    }
+}
@@ -0,0 +1,520 @@
+package util;
+
+import model.DerivationRule;
+import model.Expression;
+import model.Symbol;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * 句子生成器
+ * 沿预测分析表随机做最左推导，生成符合文法的单词流，用于压力测试
+ * 单词逐个交给调用方，不在内存中保留已生成的部分，因此长度不受内存限制；相同的种子生成相同的单词流
+ */
+public class SentenceGenerator {
+
+    /**
+     * 非法单词流的变异方式
+     */
+    public enum Mutation {
+        /** 插入一个文法中存在、但在该位置会被预测分析表拒绝的终结符 */
+        UNEXPECTED_TERMINAL,
+        /** 插入一个不属于文法终结符集合的单词 */
+        FOREIGN_TOKEN
+    }
+
+    private static final int NO_RULE = -1;
+    private static final long INFINITE = Long.MAX_VALUE / 4;
+
+    // 文法符号编号：终结符为 [0, numberOfTerminals)，非终结符为 numberOfTerminals + 非终结符序号
+    private String[] terminals;
+    private int numberOfTerminals;
+    private int startSymbol;
+    private String foreignToken;
+
+    private int[][] ruleBodies;             // 产生式右部（已去掉空串）
+    private int[][] nonTerminalRules;       // 各非终结符在预测分析表中出现的产生式
+    private int[][] predictionTable;        // [非终结符][终结符，最后一列为"$"] -> 产生式编号
+    private long[] ruleMinimumLength;       // 产生式能推出的最短单词流长度
+    private long[] symbolMinimumLength;
+    private boolean[] unbounded;            // 非终结符能否推出任意长的单词流
+    private int[][] rowLookaheads;          // [非终结符] -> 预测分析表中该行有表项的输入符号
+    private int maximumExpansionDepth;      // 不读入单词时连续展开产生的符号个数上限
+
+    private long seed = 0;
+    private long targetLength = 100;
+
+    private SentenceGenerator() { }
+
+    /**
+     * 对象创建器（必须用此方法创建对象）
+     * @param analyzer 已生成预测分析表的文法分析器
+     * @return 一个新的句子生成器
+     * @throws IllegalStateException 当文法不能推出任何句子时抛出此异常
+     */
+    public static SentenceGenerator Builder(LL1Analyzer analyzer) {
+        SentenceGenerator generator = new SentenceGenerator();
+        generator.compile(analyzer);
+        return generator;
+    }
+
+    /**
+     * 设置随机数种子
+     * @param seed 随机数种子
+     * @return 句子生成器自身
+     */
+    public SentenceGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * 设置目标长度：达到目标长度后只选择最短的推导尽快收尾，因此实际长度略大于目标长度；
+     * 文法只能推出有限长的句子时实际长度可能小于目标长度
+     * @param targetLength 目标单词个数
+     * @return 句子生成器自身
+     */
+    public SentenceGenerator targetLength(long targetLength) {
+        if (targetLength < 0) {
+            throw new IllegalArgumentException("Negative target length: " + targetLength);
+        }
+        this.targetLength = targetLength;
+        return this;
+    }
+
+    /**
+     * 把预测分析表编译为按编号索引的数组
+     * @param analyzer 文法分析器
+     */
+    private void compile(LL1Analyzer analyzer) {
+        List<Symbol> terminalList = new ArrayList<>();
+        for (Symbol symbol : analyzer.getTerminalSymbols()) {
+            if (!symbol.equals(Symbol.EPSILON)) {
+                terminalList.add(symbol);
+            }
+        }
+        Map<Symbol, Integer> symbolNumberMap = new HashMap<>();
+        numberOfTerminals = terminalList.size();
+        terminals = new String[numberOfTerminals];
+        for (int i = 0; i < numberOfTerminals; i++) {
+            terminals[i] = terminalList.get(i).content;
+            symbolNumberMap.put(terminalList.get(i), i);
+        }
+        Map<Symbol, Map<Expression, Integer>> ruleNumberMap = new LinkedHashMap<>();
+        List<int[]> bodies = new ArrayList<>();
+        ruleNumberMap.put(analyzer.getStartSymbol(), new LinkedHashMap<>());
+        for (DerivationRule rule : analyzer.getPredictedRules()) {
+            ruleNumberMap.computeIfAbsent(rule.left, key -> new LinkedHashMap<>());
+            for (Symbol symbol : rule.right.symbols) {
+                if (!analyzer.isTerminalSymbol(symbol)) { // 不出现在预测分析表左部的非终结符也需要编号
+                    ruleNumberMap.computeIfAbsent(symbol, key -> new LinkedHashMap<>());
+                }
+            }
+        }
+        for (Symbol nonTerminal : ruleNumberMap.keySet()) {
+            symbolNumberMap.put(nonTerminal, symbolNumberMap.size());
+        }
+        for (DerivationRule rule : analyzer.getPredictedRules()) {
+            Map<Expression, Integer> rules = ruleNumberMap.get(rule.left);
+            if (!rules.containsKey(rule.right)) {
+                rules.put(rule.right, bodies.size());
+                bodies.add(rule.right.symbols.stream()
+                        .filter(symbol -> !symbol.equals(Symbol.EPSILON))
+                        .mapToInt(symbolNumberMap::get)
+                        .toArray());
+            }
+        }
+        int numberOfNonTerminals = ruleNumberMap.size();
+        startSymbol = symbolNumberMap.get(analyzer.getStartSymbol());
+        ruleBodies = bodies.toArray(new int[0][]);
+        nonTerminalRules = new int[numberOfNonTerminals][];
+        predictionTable = new int[numberOfNonTerminals][numberOfTerminals + 1];
+        int nonTerminalIndex = 0;
+        for (Map.Entry<Symbol, Map<Expression, Integer>> entry : ruleNumberMap.entrySet()) {
+            nonTerminalRules[nonTerminalIndex] = entry.getValue().values().stream().mapToInt(x -> x).toArray();
+            for (int lookahead = 0; lookahead <= numberOfTerminals; lookahead++) {
+                Symbol inputSymbol = lookahead == numberOfTerminals ? Symbol.of("$") : terminalList.get(lookahead);
+                DerivationRule rule = analyzer.getPredictedRule(entry.getKey(), inputSymbol);
+                predictionTable[nonTerminalIndex][lookahead] = rule == null ? NO_RULE : entry.getValue().get(rule.right);
+            }
+            nonTerminalIndex++;
+        }
+        rowLookaheads = new int[numberOfNonTerminals][];
+        for (int nonTerminal = 0; nonTerminal < numberOfNonTerminals; nonTerminal++) {
+            int[] row = predictionTable[nonTerminal];
+            rowLookaheads[nonTerminal] = IntStream.range(0, row.length)
+                    .filter(lookahead -> row[lookahead] != NO_RULE).toArray();
+        }
+        foreignToken = "<foreign>";
+        while (analyzer.isTerminalSymbol(Symbol.of(foreignToken)) || foreignToken.equals("$")) {
+            foreignToken = foreignToken.concat("'");
+        }
+        // LL1文法没有左递归，不读入单词时同一非终结符不会在展开链上出现两次
+        int maximumBodyLength = 0;
+        for (int[] body : ruleBodies) {
+            maximumBodyLength = Math.max(maximumBodyLength, body.length);
+        }
+        maximumExpansionDepth = numberOfNonTerminals * maximumBodyLength + 1;
+        calculateMinimumLengths();
+        calculateUnboundedSymbols();
+        if (symbolMinimumLength[startSymbol] >= INFINITE) {
+            throw new IllegalStateException("Grammar generates no sentence!");
+        }
+    }
+
+    /**
+     * 计算各产生式和非终结符能推出的最短单词流长度
+     */
+    private void calculateMinimumLengths() {
+        int numberOfNonTerminals = nonTerminalRules.length;
+        symbolMinimumLength = new long[numberOfTerminals + numberOfNonTerminals];
+        Arrays.fill(symbolMinimumLength, 0, numberOfTerminals, 1);
+        Arrays.fill(symbolMinimumLength, numberOfTerminals, symbolMinimumLength.length, INFINITE);
+        ruleMinimumLength = new long[ruleBodies.length];
+        Arrays.fill(ruleMinimumLength, INFINITE);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int nonTerminal = 0; nonTerminal < numberOfNonTerminals; nonTerminal++) {
+                for (int rule : nonTerminalRules[nonTerminal]) {
+                    long length = 0;
+                    for (int symbol : ruleBodies[rule]) {
+                        length = Math.min(INFINITE, length + symbolMinimumLength[symbol]);
+                    }
+                    ruleMinimumLength[rule] = length;
+                    if (length < symbolMinimumLength[numberOfTerminals + nonTerminal]) {
+                        symbolMinimumLength[numberOfTerminals + nonTerminal] = length;
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 找出能推出任意长单词流的非终结符：在只由可终止产生式构成的依赖图中，能到达某个环的非终结符
+     */
+    private void calculateUnboundedSymbols() {
+        int numberOfNonTerminals = nonTerminalRules.length;
+        boolean[][] reachable = new boolean[numberOfNonTerminals][numberOfNonTerminals];
+        for (int nonTerminal = 0; nonTerminal < numberOfNonTerminals; nonTerminal++) {
+            Deque<Integer> pending = new ArrayDeque<>();
+            pending.push(nonTerminal);
+            while (!pending.isEmpty()) {
+                int current = pending.pop();
+                for (int rule : nonTerminalRules[current]) {
+                    if (ruleMinimumLength[rule] >= INFINITE) {
+                        continue;
+                    }
+                    for (int symbol : ruleBodies[rule]) {
+                        if (symbol >= numberOfTerminals && !reachable[nonTerminal][symbol - numberOfTerminals]) {
+                            reachable[nonTerminal][symbol - numberOfTerminals] = true;
+                            pending.push(symbol - numberOfTerminals);
+                        }
+                    }
+                }
+            }
+        }
+        unbounded = new boolean[numberOfNonTerminals];
+        for (int nonTerminal = 0; nonTerminal < numberOfNonTerminals; nonTerminal++) {
+            for (int other = 0; other < numberOfNonTerminals; other++) {
+                if ((other == nonTerminal || reachable[nonTerminal][other]) && reachable[other][other]) {
+                    unbounded[nonTerminal] = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 生成一个符合文法的单词流
+     * 注意：目标长度为0且文法能推出空串时生成空单词流，而LL1Analyzer把空单词流判定为不符合文法
+     * @param sink 逐个接收单词的回调
+     * @return 生成的单词个数
+     */
+    public long generate(Consumer<String> sink) {
+        return run(sink, null, -1);
+    }
+
+    /**
+     * 生成一个符合文法的单词流，并写入单词流文件（每行一个单词）
+     * @param tokenFileName 输出的单词流文件路径
+     * @return 生成的单词个数
+     * @throws IOException 无法写入文件时抛出此异常
+     */
+    public long generate(String tokenFileName) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(tokenFileName))) {
+            return generate(lineWriter(writer));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 生成一个不符合文法的单词流：在随机位置按指定方式插入一个会被文法分析器拒绝的单词，其余部分仍按文法生成
+     * 随机位置在目标长度内选取；推导在到达该位置之前就要结束时（例如语言有限），在推导结束前的最后一步插入
+     * @param mutation 变异方式
+     * @param sink 逐个接收单词的回调
+     * @return 插入的单词在单词流中的位置，无法插入时返回-1（此时生成的单词流是合法的）
+     */
+    public long generateInvalid(Mutation mutation, Consumer<String> sink) {
+        long mutationPosition = targetLength == 0 ? 0 : new SplittableRandom(~seed).nextLong(targetLength);
+        return run(sink, mutation, mutationPosition);
+    }
+
+    /**
+     * 生成一个不符合文法的单词流，并写入单词流文件（每行一个单词）
+     * @param mutation 变异方式
+     * @param tokenFileName 输出的单词流文件路径
+     * @return 插入的单词在单词流中的位置，无法在任何位置插入时返回-1
+     * @throws IOException 无法写入文件时抛出此异常
+     */
+    public long generateInvalid(Mutation mutation, String tokenFileName) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(tokenFileName))) {
+            return generateInvalid(mutation, lineWriter(writer));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 把单词逐行写入Writer的回调
+     * @param writer 输出
+     * @return 回调
+     */
+    private static Consumer<String> lineWriter(Writer writer) {
+        return token -> {
+            try {
+                writer.write(token);
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * 生成单词流：每一步先为栈顶选定下一个输入符号，模拟确认文法分析器会接受它，再按预测分析表推进分析栈，
+     * 因此生成的单词流按预测分析表逐个单词都能被接受
+     * @param sink 逐个接收单词的回调
+     * @param mutation 变异方式，为null时生成合法单词流
+     * @param mutationPosition 最早在第几个单词之前插入变异单词，推导提前结束时在最后一步插入
+     * @return 合法单词流返回单词个数，非法单词流返回变异单词的位置或-1
+     */
+    private long run(Consumer<String> sink, Mutation mutation, long mutationPosition) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Derivation derivation = new Derivation();
+        long emitted = 0;
+        long mutatedAt = -1;
+        while (derivation.size > 0) {
+            int lookahead = chooseLookahead(derivation, emitted, random);
+            if (lookahead == NO_RULE) {
+                throw new IllegalStateException("Prediction analysis table accepts no token after " + emitted + " tokens!");
+            }
+            if (mutation != null && mutatedAt < 0
+                    && (emitted >= mutationPosition || isLastStep(derivation, lookahead))) {
+                String token = mutation == Mutation.FOREIGN_TOKEN
+                        ? foreignToken
+                        : findUnexpectedTerminal(derivation, random);
+                if (token != null) {
+                    sink.accept(token);
+                    mutatedAt = emitted;
+                }
+            }
+            derivation.advance(lookahead);
+            if (lookahead < numberOfTerminals) {
+                sink.accept(terminals[lookahead]);
+                emitted++;
+            }
+        }
+        return mutation == null ? emitted : mutatedAt;
+    }
+
+    /**
+     * 为当前栈状态选择下一个输入符号
+     * 达到目标长度后选择使栈中剩余最短长度最小的输入符号，保证尽快收尾；
+     * 未达到目标长度时随机选择，但尽量不结束句子、不消耗掉最后一个能无限增长的非终结符
+     * @param derivation 当前推导
+     * @param emitted 已生成的单词个数
+     * @param random 随机数发生器
+     * @return 文法分析器会接受的输入符号编号（numberOfTerminals表示"$"），不存在时返回NO_RULE
+     */
+    private int chooseLookahead(Derivation derivation, long emitted, SplittableRandom random) {
+        int top = derivation.symbolStack[derivation.size - 1];
+        if (top < numberOfTerminals) {
+            return top;
+        }
+        int[] row = rowLookaheads[top - numberOfTerminals];
+        if (row.length == 0) {
+            return NO_RULE;
+        }
+        boolean closing = emitted + derivation.pendingLength >= targetLength;
+        int offset = random.nextInt(row.length);
+        int chosen = NO_RULE;
+        long chosenPendingLength = Long.MAX_VALUE;
+        for (int i = 0; i < row.length; i++) {
+            int lookahead = row[(offset + i) % row.length];
+            if (!derivation.simulate(lookahead)) {
+                continue;
+            }
+            if (closing) {
+                if (derivation.simulatedPendingLength < chosenPendingLength) {
+                    chosen = lookahead;
+                    chosenPendingLength = derivation.simulatedPendingLength;
+                }
+            } else if (lookahead != numberOfTerminals
+                    && (derivation.simulatedGrowingSymbols > 0 || derivation.growingSymbols == 0)) {
+                return lookahead;
+            } else if (chosen == NO_RULE || chosen == numberOfTerminals) {
+                chosen = lookahead; // 只在没有更好的选择时才结束句子或停止增长
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * 判断以给定的输入符号推进后分析栈是否被清空，即这是插入变异单词的最后机会
+     * @param derivation 当前推导
+     * @param lookahead 已选定的输入符号编号
+     * @return 推进后分析栈是否为空
+     */
+    private boolean isLastStep(Derivation derivation, int lookahead) {
+        return derivation.simulate(lookahead) && derivation.simulatedSize == 0;
+    }
+
+    /**
+     * 从随机位置开始依次尝试各终结符，找出一个在当前栈状态下会被文法分析器拒绝的终结符
+     * @param derivation 当前推导
+     * @param random 随机数发生器
+     * @return 会被拒绝的终结符，不存在时返回null
+     */
+    private String findUnexpectedTerminal(Derivation derivation, SplittableRandom random) {
+        if (numberOfTerminals == 0) {
+            return null;
+        }
+        int offset = random.nextInt(numberOfTerminals);
+        for (int i = 0; i < numberOfTerminals; i++) {
+            int candidate = (offset + i) % numberOfTerminals;
+            if (!derivation.simulate(candidate)) {
+                return terminals[candidate];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 一次生成过程中的分析栈（不含"$"），与文法分析器读入同样单词流时的分析栈一致
+     */
+    private class Derivation {
+        int[] symbolStack = new int[64];
+        int size = 0;
+        long pendingLength = 0; // 栈中符号最短能推出的单词个数之和
+        int growingSymbols = 0; // 栈中能无限增长的非终结符个数
+        int simulatedSize;
+        long simulatedPendingLength;
+        int simulatedGrowingSymbols;
+        int[] scratch = new int[maximumExpansionDepth];
+
+        Derivation() {
+            push(startSymbol);
+        }
+
+        void push(int symbol) {
+            if (size == symbolStack.length) {
+                symbolStack = Arrays.copyOf(symbolStack, size * 2);
+            }
+            symbolStack[size++] = symbol;
+            pendingLength += symbolMinimumLength[symbol];
+            if (symbol >= numberOfTerminals && unbounded[symbol - numberOfTerminals]) {
+                growingSymbols++;
+            }
+        }
+
+        int pop() {
+            int symbol = symbolStack[--size];
+            pendingLength -= symbolMinimumLength[symbol];
+            if (symbol >= numberOfTerminals && unbounded[symbol - numberOfTerminals]) {
+                growingSymbols--;
+            }
+            return symbol;
+        }
+
+        /**
+         * 以给定的输入符号推进分析栈，直到该终结符被匹配或栈被清空
+         * @param lookahead 已确认会被接受的输入符号编号
+         */
+        void advance(int lookahead) {
+            while (size > 0) {
+                int symbol = pop();
+                if (symbol < numberOfTerminals) {
+                    return;
+                }
+                int[] body = ruleBodies[predictionTable[symbol - numberOfTerminals][lookahead]];
+                for (int i = body.length - 1; i >= 0; i--) {
+                    push(body[i]);
+                }
+            }
+        }
+
+        /**
+         * 模拟文法分析器在当前栈状态下读入一个输入符号，判断它是否会被接受；不修改分析栈
+         * 接受时把读入后的栈大小、栈中剩余最短长度和能无限增长的非终结符个数记入simulated*字段
+         * @param lookahead 输入符号编号
+         * @return 该输入符号是否会被匹配（或分析栈先于它被清空）
+         */
+        boolean simulate(int lookahead) {
+            int scratchSize = 0;
+            int depth = size;
+            long remainingLength = pendingLength;
+            int remainingGrowingSymbols = growingSymbols;
+            while (true) {
+                int symbol;
+                if (scratchSize > 0) {
+                    symbol = scratch[--scratchSize];
+                } else if (depth > 0) {
+                    symbol = symbolStack[--depth];
+                } else {
+                    break; // 栈中只剩"$"，文法分析器不再读入单词
+                }
+                remainingLength -= symbolMinimumLength[symbol];
+                if (symbol < numberOfTerminals) {
+                    if (symbol != lookahead) {
+                        return false;
+                    }
+                    break;
+                }
+                if (unbounded[symbol - numberOfTerminals]) {
+                    remainingGrowingSymbols--;
+                }
+                int rule = predictionTable[symbol - numberOfTerminals][lookahead];
+                if (rule == NO_RULE) {
+                    return false;
+                }
+                int[] body = ruleBodies[rule];
+                if (scratchSize + body.length > scratch.length) {
+                    return false; // 预测分析表中存在不读入单词的展开循环，文法分析器无法读入该符号
+                }
+                for (int i = body.length - 1; i >= 0; i--) {
+                    int pushing = body[i];
+                    scratch[scratchSize++] = pushing;
+                    remainingLength += symbolMinimumLength[pushing];
+                    if (pushing >= numberOfTerminals && unbounded[pushing - numberOfTerminals]) {
+                        remainingGrowingSymbols++;
+                    }
+                }
+            }
+            simulatedSize = depth + scratchSize;
+            simulatedPendingLength = remainingLength;
+            simulatedGrowingSymbols = remainingGrowingSymbols;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package util;
+
+import model.Symbol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 单词流语料
+ * 以内存映射方式读取TokenCorpusPacker生成的语料文件，单词在打开时只解码一次，之后按编号访问
+ * 语料对象只读，可由多个线程共享；slice得到的子语料与原语料共用同一块映射内存
+ */
+public class TokenCorpus {
+
+    private Symbol[] dictionary;
+    private IntBuffer streamBoundaries;
+    private IntBuffer tokenIds;
+    private int firstStream;
+    private int numberOfStreams;
+
+    private TokenCorpus() { }
+
+    /**
+     * 打开一个语料文件
+     * 语料文件整体映射为一块内存，因此不能超过2GB（Integer.MAX_VALUE字节）；更大的语料应拆分为多个文件
+     * 打开时检查文件头、字典和单词流边界是否与文件长度一致，单词编号在读取时才检查
+     * @param corpusFileName 语料文件路径
+     * @return 映射到该文件的语料
+     * @throws IOException 找不到文件、文件超过2GB或文件格式不正确时抛出此异常
+     */
+    public static TokenCorpus open(String corpusFileName) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(corpusFileName), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Token corpus file larger than 2GB: " + corpusFileName);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < 12
+                || buffer.getInt() != TokenCorpusPacker.MAGIC
+                || buffer.getInt() != TokenCorpusPacker.VERSION) {
+            throw new IOException("Not a token corpus file: " + corpusFileName);
+        }
+        TokenCorpus corpus = new TokenCorpus();
+        int dictionarySize = buffer.getInt();
+        if (dictionarySize < 0 || dictionarySize > buffer.remaining() / 4) {
+            throw corrupted(corpusFileName);
+        }
+        corpus.dictionary = new Symbol[dictionarySize];
+        for (int i = 0; i < dictionarySize; i++) {
+            int length = buffer.remaining() < 4 ? -1 : buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw corrupted(corpusFileName);
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            corpus.dictionary[i] = Symbol.of(new String(bytes, StandardCharsets.UTF_8));
+        }
+        int alignedPosition = (buffer.position() + 3) & ~3;
+        if (alignedPosition + 4 > buffer.limit()) {
+            throw corrupted(corpusFileName);
+        }
+        buffer.position(alignedPosition);
+        corpus.numberOfStreams = buffer.getInt();
+        if (corpus.numberOfStreams < 0 || corpus.numberOfStreams >= buffer.remaining() / 4
+                || buffer.remaining() % 4 != 0) {
+            throw corrupted(corpusFileName);
+        }
+        corpus.streamBoundaries = slice(buffer, corpus.numberOfStreams + 1);
+        buffer.position(buffer.position() + (corpus.numberOfStreams + 1) * 4);
+        corpus.tokenIds = slice(buffer, buffer.remaining() / 4);
+
+        // 单词流边界必须从0开始、单调不减，并以单词总数结束
+        int previousBoundary = 0;
+        for (int i = 0; i <= corpus.numberOfStreams; i++) {
+            int boundary = corpus.streamBoundaries.get(i);
+            if (boundary < previousBoundary || (i == 0 && boundary != 0)) {
+                throw corrupted(corpusFileName);
+            }
+            previousBoundary = boundary;
+        }
+        if (previousBoundary != corpus.tokenIds.limit()) {
+            throw corrupted(corpusFileName);
+        }
+        return corpus;
+    }
+
+    private static IOException corrupted(String corpusFileName) {
+        return new IOException("Corrupted token corpus file: " + corpusFileName);
+    }
+
+    /**
+     * 从字节缓冲区的当前位置截取一段int视图，不复制数据
+     * @param buffer 字节缓冲区
+     * @param length int的个数
+     * @return int视图
+     */
+    private static IntBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer view = buffer.slice();
+        view.limit(length * 4);
+        return view.asIntBuffer();
+    }
+
+    /**
+     * 取得语料中单词流的个数
+     * @return 单词流个数
+     */
+    public int size() {
+        return numberOfStreams;
+    }
+
+    /**
+     * 截取部分单词流作为子语料，用于把语料分给多个线程并行分析，不复制数据
+     * @param fromStream 起始单词流序号（包含）
+     * @param toStream 结束单词流序号（不包含）
+     * @return 子语料
+     */
+    public TokenCorpus slice(int fromStream, int toStream) {
+        if (fromStream < 0 || toStream > numberOfStreams || fromStream > toStream) {
+            throw new IndexOutOfBoundsException("[" + fromStream + ", " + toStream + ")");
+        }
+        TokenCorpus corpus = new TokenCorpus();
+        corpus.dictionary = dictionary;
+        corpus.streamBoundaries = streamBoundaries;
+        corpus.tokenIds = tokenIds;
+        corpus.firstStream = firstStream + fromStream;
+        corpus.numberOfStreams = toStream - fromStream;
+        return corpus;
+    }
+
+    /**
+     * 取得单词流的长度
+     * @param streamIndex 单词流序号
+     * @return 单词个数
+     */
+    public int length(int streamIndex) {
+        int index = checkIndex(streamIndex);
+        return streamBoundaries.get(index + 1) - streamBoundaries.get(index);
+    }
+
+    /**
+     * 取得单词流中第几个单词
+     * @param streamIndex 单词流序号
+     * @param tokenIndex 单词在该单词流中的序号
+     * @return 单词对应的文法符号
+     */
+    public Symbol symbol(int streamIndex, int tokenIndex) {
+        if (tokenIndex < 0 || tokenIndex >= length(streamIndex)) {
+            throw new IndexOutOfBoundsException(String.valueOf(tokenIndex));
+        }
+        return symbolAt(offset(streamIndex) + tokenIndex);
+    }
+
+    /**
+     * 取得单词流的第一个单词在整个单词编号序列中的位置
+     * @param streamIndex 单词流序号
+     * @return 第一个单词的位置
+     */
+    int offset(int streamIndex) {
+        return streamBoundaries.get(checkIndex(streamIndex));
+    }
+
+    /**
+     * 按整个单词编号序列中的位置取得单词，不检查位置是否越界
+     * @param position 单词的位置
+     * @return 单词对应的文法符号
+     * @throws IllegalStateException 单词编号超出字典范围（语料文件损坏）时抛出此异常
+     */
+    Symbol symbolAt(int position) {
+        return dictionary[tokenIdAt(position)];
+    }
+
+    /**
+     * 按整个单词编号序列中的位置取得单词在字典中的编号，不检查位置是否越界
+     * @param position 单词的位置
+     * @return 单词编号
+     * @throws IllegalStateException 单词编号超出字典范围（语料文件损坏）时抛出此异常
+     */
+    int tokenIdAt(int position) {
+        int id = tokenIds.get(position);
+        if (id < 0 || id >= dictionary.length) {
+            throw new IllegalStateException("Corrupted token id " + id + " at " + position);
+        }
+        return id;
+    }
+
+    /**
+     * 取得单词字典，子语料与原语料共用同一个字典
+     * @return 单词编号到文法符号的字典
+     */
+    Symbol[] getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * 检查单词流序号并换算为整个语料文件中的序号
+     * @param streamIndex 子语料中的单词流序号
+     * @return 语料文件中的单词流序号
+     */
+    private int checkIndex(int streamIndex) {
+        if (streamIndex < 0 || streamIndex >= numberOfStreams) {
+            throw new IndexOutOfBoundsException(String.valueOf(streamIndex));
+        }
+        return firstStream + streamIndex;
+    }
+}
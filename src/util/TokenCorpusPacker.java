@@ -0,0 +1,112 @@
+package util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * 单词流语料打包器
+ * 把若干个按行分隔的单词流文件转换为TokenCorpus读取的紧凑二进制格式：
+ * 文件头、单词字典、各单词流的边界以及int编号的单词序列
+ */
+public class TokenCorpusPacker {
+
+    static final int MAGIC = 0x53595443; // "SYTC"
+    static final int VERSION = 1;
+    static final int MAXIMUM_TOKEN_COUNT = Integer.MAX_VALUE / 4; // 语料文件整体映射为一块内存，不能超过2GB
+
+    private Map<String, Integer> dictionary = new LinkedHashMap<>();
+    private List<Integer> streamBoundaries = new ArrayList<Integer>() {{
+        add(0);
+    }};
+    private int[] tokenIds = new int[1024];
+    private int tokenCount = 0;
+
+    private TokenCorpusPacker() { }
+
+    /**
+     * 对象创建器（必须用此方法创建对象）
+     * @return 一个新的语料打包器
+     */
+    public static TokenCorpusPacker Builder() {
+        return new TokenCorpusPacker();
+    }
+
+    /**
+     * 加入一个单词流文件，作为语料中的一个单词流
+     * @param tokenFileName 单词流文件路径
+     * @return 语料打包器自身
+     * @throws IOException 找不到文件时抛出此异常
+     */
+    public TokenCorpusPacker addTokenFile(String tokenFileName) throws IOException {
+        return addTokens(Files.readAllLines(Paths.get(tokenFileName)));
+    }
+
+    /**
+     * 加入一个单词流，作为语料中的一个单词流
+     * @param tokens 单词流
+     * @return 语料打包器自身
+     * @throws IllegalStateException 语料的单词总数超过2GB文件所能容纳的上限时抛出此异常
+     */
+    public TokenCorpusPacker addTokens(List<String> tokens) {
+        if (!(tokens.size() == 1 && tokens.get(0).equals(""))) { // 与LL1Analyzer.analyze一致，只有一个空行的文件视为空文件
+            for (String token : tokens) {
+                Integer id = dictionary.get(token);
+                if (id == null) {
+                    id = dictionary.size();
+                    dictionary.put(token, id);
+                }
+                if (tokenCount == MAXIMUM_TOKEN_COUNT) {
+                    throw new IllegalStateException("Token corpus exceeds 2GB limit");
+                }
+                if (tokenCount == tokenIds.length) {
+                    tokenIds = Arrays.copyOf(tokenIds, (int) Math.min(tokenIds.length * 2L, MAXIMUM_TOKEN_COUNT));
+                }
+                tokenIds[tokenCount++] = id;
+            }
+        }
+        streamBoundaries.add(tokenCount);
+        return this;
+    }
+
+    /**
+     * 写出语料文件
+     * 格式（大端序）：魔数、版本号、字典大小、各单词的UTF-8长度与内容、补齐到4字节的填充、
+     * 单词流个数n、n+1个单词流边界（单词序号）、全部单词编号
+     * @param corpusFileName 输出的语料文件路径
+     * @throws IOException 无法写入文件或语料文件将超过2GB时抛出此异常
+     */
+    public void pack(String corpusFileName) throws IOException {
+        long fileSize = 12;
+        for (String token : dictionary.keySet()) {
+            fileSize += 4 + token.getBytes(StandardCharsets.UTF_8).length;
+        }
+        fileSize = (fileSize + 3) / 4 * 4 + 4 + 4L * streamBoundaries.size() + 4L * tokenCount;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Token corpus exceeds 2GB limit: " + fileSize + " bytes");
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(corpusFileName)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dictionary.size());
+            for (String token : dictionary.keySet()) {
+                byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            while (out.size() % 4 != 0) { // 对齐，使单词编号可以直接以IntBuffer映射
+                out.writeByte(0);
+            }
+            out.writeInt(streamBoundaries.size() - 1);
+            for (int boundary : streamBoundaries) {
+                out.writeInt(boundary);
+            }
+            for (int i = 0; i < tokenCount; i++) {
+                out.writeInt(tokenIds[i]);
+            }
+        }
+    }
+}